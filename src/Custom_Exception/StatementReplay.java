@@ -0,0 +1,478 @@
+/*
+ * =====================================================
+ *   Replaying Statements WITHOUT Exceptions
+ * =====================================================
+ *
+ * 1. The problem
+ *    - Bank.withdraw() signals an overdraft by THROWING InsufficientAmountException.
+ *    - That is fine for one customer at an ATM.
+ *    - But replaying millions of end-of-day transactions means millions of
+ *      exception objects (each one fills in a stack trace) → replay crawls.
+ *
+ *    Rule of thumb:
+ *      Exceptions are for EXCEPTIONAL situations.
+ *      If a "failure" is an expected, frequent outcome (like an overdraft in a
+ *      statement file), report it as DATA instead of throwing.
+ *
+ * 2. What this class does
+ *    - Reads a columnar binary transaction file:
+ *
+ *        int    count
+ *        int[]  account ids   (count values)
+ *        int[]  amounts       (count values)
+ *
+ *    - Applies every transaction to an int[] of balances in a tight primitive loop.
+ *    - Splits the accounts into contiguous blocks, one block per CPU core.
+ *      Each account is owned by exactly ONE thread, and that thread visits the
+ *      account's transactions in file order → same result as calling withdraw()
+ *      one by one.
+ *    - Each thread scans the columns in order, skips other blocks' accounts, and
+ *      keeps its own list of rejected indexes; the lists are merged at the end.
+ *    - Small statements (and single-core machines) simply use one thread.
+ *    - Writes a compact rejection report:
+ *
+ *        int    rejected count
+ *        int[]  transaction indexes (ascending)
+ *
+ * 3. Same semantics as Bank.withdraw()
+ *    - if (balance < amount) → rejected, balance unchanged
+ *    - else                  → balance = balance - amount
+ *
+ * =====================================================
+ */
+
+package Custom_Exception;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StatementReplay {
+
+    // Size of the I/O buffer (a multiple of 4 so it always holds whole ints)
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // Reads the columnar transaction file
+    // The header is checked against the file size BEFORE any big array is allocated
+    public static Transactions readTransactions(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+            int count = readHeader(ch, buf);
+            if (count < 0 || ch.size() != 4 + 8L * count) {
+                throw new IOException("Corrupt transaction file: count " + count
+                        + " does not match file size " + ch.size());
+            }
+
+            int[] accounts = new int[count];
+            int[] amounts = new int[count];
+            readInts(ch, buf, accounts);
+            readInts(ch, buf, amounts);
+            return new Transactions(accounts, amounts);
+        }
+        // Channel closed automatically here (try-with-resources)
+    }
+
+    // Writes transactions in the same columnar layout (useful for tests and demos)
+    public static void writeTransactions(String path, Transactions txns) throws IOException {
+        try (FileChannel ch = openForWrite(path)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            writeInts(ch, buf, new int[]{txns.size()});
+            writeInts(ch, buf, txns.getAccounts());
+            writeInts(ch, buf, txns.getAmounts());
+        }
+    }
+
+    // Writes the compact rejection report: count followed by transaction indexes
+    public static void writeRejections(String path, int[] rejected) throws IOException {
+        try (FileChannel ch = openForWrite(path)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            writeInts(ch, buf, new int[]{rejected.length});
+            writeInts(ch, buf, rejected);
+        }
+    }
+
+    // Reads a rejection report written by writeRejections()
+    public static int[] readRejections(String path) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+            int count = readHeader(ch, buf);
+            if (count < 0 || ch.size() != 4 + 4L * count) {
+                throw new IOException("Corrupt rejection report: count " + count
+                        + " does not match file size " + ch.size());
+            }
+
+            int[] rejected = new int[count];
+            readInts(ch, buf, rejected);
+            return rejected;
+        }
+    }
+
+    // Below this many transactions, starting threads costs more than it saves
+    private static final int PARALLEL_MIN_TRANSACTIONS = 1 << 20;
+
+    // Applies all transactions to balances (modified in place)
+    // Returns the indexes of rejected transactions in ascending order
+    // No exception is thrown for an overdraft — it is simply recorded.
+    // threads is an upper limit: small statements and single-core machines replay on one thread.
+    // If a worker fails, its cause is rethrown here and balances are left partly updated.
+    public static int[] replay(int[] balances, Transactions txns, int threads) throws InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        int parts = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        if (txns.size() < PARALLEL_MIN_TRANSACTIONS) {
+            parts = 1;
+        }
+        return replayWith(balances, txns, parts);
+    }
+
+    // Replays with exactly "parts" account blocks (capped at the number of accounts)
+    private static int[] replayWith(int[] balances, Transactions txns, int parts) throws InterruptedException {
+        int[] accounts = txns.getAccounts();
+        int[] amounts = txns.getAmounts();
+
+        // Validate account ids up front, so workers never fail halfway on bad input
+        for (int i = 0; i < accounts.length; i++) {
+            if (accounts[i] < 0 || accounts[i] >= balances.length) {
+                throw new IllegalArgumentException("Unknown account " + accounts[i] + " at transaction " + i);
+            }
+        }
+
+        // No point in more blocks than accounts
+        parts = Math.min(parts, balances.length);
+        if (parts <= 1) {
+            return replaySequential(balances, accounts, amounts);
+        }
+        return replayParallel(balances, accounts, amounts, parts);
+    }
+
+    // Tight primitive loop over the whole statement (single thread)
+    private static int[] replaySequential(int[] balances, int[] accounts, int[] amounts) {
+        int[] rejected = new int[16];
+        int n = 0;
+        for (int i = 0; i < accounts.length; i++) {
+            int account = accounts[i];
+            int amount = amounts[i];
+            if (balances[account] < amount) {
+                if (n == rejected.length) {
+                    rejected = Arrays.copyOf(rejected, n * 2);
+                }
+                rejected[n++] = i;  // same check as Bank.withdraw(), but no throw
+            } else {
+                balances[account] = balances[account] - amount;
+            }
+        }
+        return Arrays.copyOf(rejected, n);
+    }
+
+    // Splits accounts into contiguous blocks, one per worker
+    // Contiguous blocks keep each worker on its own cache lines of balances[],
+    // and each worker keeps its own rejection list, so no array is written by two threads.
+    private static int[] replayParallel(int[] balances, int[] accounts, int[] amounts,
+                                        int parts) throws InterruptedException {
+        int blockSize = (balances.length + parts - 1) / parts;
+        parts = (balances.length + blockSize - 1) / blockSize;
+
+        int[][] rejectedByBlock = new int[parts][];
+        List<Future<?>> futures = new ArrayList<>(parts);
+        ExecutorService pool = Executors.newFixedThreadPool(parts);
+        Throwable failure = null;
+        boolean interrupted = false;
+        try {
+            for (int p = 0; p < parts; p++) {
+                final int block = p;
+                final int from = p * blockSize;
+                final int to = Math.min(from + blockSize, balances.length);
+                futures.add(pool.submit(() -> {
+                    rejectedByBlock[block] = replayBlock(balances, accounts, amounts, from, to);
+                }));
+            }
+        } finally {
+            // Wait for EVERY worker, even if interrupted, so nothing is still writing balances
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();  // get() also makes the worker's writes visible here
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;  // remember it, keep waiting
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause();
+                        } else {
+                            failure.addSuppressed(e.getCause());
+                        }
+                        break;
+                    }
+                }
+            }
+            pool.shutdown();
+        }
+
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;  // Runnable can only throw unchecked exceptions
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedException("Interrupted while replaying");
+        }
+        return mergeAll(rejectedByBlock);
+    }
+
+    // Tight primitive loop for one block of accounts [from, to)
+    // Scans the columns in file order and skips accounts owned by other blocks
+    private static int[] replayBlock(int[] balances, int[] accounts, int[] amounts, int from, int to) {
+        int[] rejected = new int[16];
+        int n = 0;
+        for (int i = 0; i < accounts.length; i++) {
+            int account = accounts[i];
+            if (account < from || account >= to) {
+                continue;  // owned by another worker
+            }
+            int amount = amounts[i];
+            if (balances[account] < amount) {
+                if (n == rejected.length) {
+                    rejected = Arrays.copyOf(rejected, n * 2);
+                }
+                rejected[n++] = i;
+            } else {
+                balances[account] = balances[account] - amount;
+            }
+        }
+        return Arrays.copyOf(rejected, n);
+    }
+
+    // Merges the per-block lists (each ascending) pairwise: log2(blocks) linear passes
+    private static int[] mergeAll(int[][] lists) {
+        while (lists.length > 1) {
+            int[][] merged = new int[(lists.length + 1) / 2][];
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] = 2 * i + 1 < lists.length ? merge(lists[2 * i], lists[2 * i + 1]) : lists[2 * i];
+            }
+            lists = merged;
+        }
+        return lists[0];
+    }
+
+    // Standard two-way merge of ascending lists
+    private static int[] merge(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            out[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        }
+        while (i < a.length) {
+            out[k++] = a[i++];
+        }
+        while (j < b.length) {
+            out[k++] = b[j++];
+        }
+        return out;
+    }
+
+    private static FileChannel openForWrite(String path) throws IOException {
+        return FileChannel.open(Paths.get(path), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Reads the leading count (big-endian, same as DataOutputStream)
+    private static int readHeader(FileChannel ch, ByteBuffer buf) throws IOException {
+        int[] header = new int[1];
+        readInts(ch, buf, header);
+        return header[0];
+    }
+
+    // Bulk-reads dst.length ints, one buffer at a time
+    private static void readInts(FileChannel ch, ByteBuffer buf, int[] dst) throws IOException {
+        int off = 0;
+        while (off < dst.length) {
+            int n = Math.min(buf.capacity() / 4, dst.length - off);
+            buf.clear().limit(n * 4);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    throw new EOFException("Unexpected end of file");
+                }
+            }
+            buf.flip();
+            buf.asIntBuffer().get(dst, off, n);
+            off += n;
+        }
+    }
+
+    // Bulk-writes all of src, one buffer at a time
+    private static void writeInts(FileChannel ch, ByteBuffer buf, int[] src) throws IOException {
+        int off = 0;
+        while (off < src.length) {
+            int n = Math.min(buf.capacity() / 4, src.length - off);
+            buf.clear();
+            buf.asIntBuffer().put(src, off, n);
+            buf.limit(n * 4);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            off += n;
+        }
+    }
+
+    // Main method: replay statements with several thread counts and compare with Bank.withdraw()
+    // Run with argument "bench" to time the sequential and parallel paths instead
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("bench")) {
+            benchmark();
+            return;
+        }
+
+        // 1. Hand-picked statement (includes a negative amount, which withdraw() also accepts)
+        int[] initial = {10, 50, 0, 100};
+        Transactions handPicked = new Transactions(
+                new int[]{0, 1, 0, 2, 3, 1, 0, 3, 2, 1},
+                new int[]{5, 20, 7, 1, 60, 30, 5, 50, -5, 1});
+        check("hand-picked", initial, handPicked);
+
+        // 2. Random statement (fixed seed, so every run is the same)
+        Random random = new Random(26);
+        int[] randomInitial = new int[6];
+        for (int i = 0; i < randomInitial.length; i++) {
+            randomInitial[i] = random.nextInt(100);
+        }
+        int[] accounts = new int[40];
+        int[] amounts = new int[40];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = random.nextInt(randomInitial.length);
+            amounts[i] = random.nextInt(80) - 20;
+        }
+        check("random", randomInitial, new Transactions(accounts, amounts));
+    }
+
+    // Times 20M transactions over 1M accounts on 1, 2, 4, ... threads (up to the core count)
+    // Prints the best of 5 runs per thread count, after 2 warm-up runs
+    private static void benchmark() throws Exception {
+        int transactions = 20_000_000;
+        int accountCount = 1_000_000;
+        Random random = new Random(26);
+        int[] initial = new int[accountCount];
+        for (int i = 0; i < accountCount; i++) {
+            initial[i] = random.nextInt(1000);
+        }
+        int[] accounts = new int[transactions];
+        int[] amounts = new int[transactions];
+        for (int i = 0; i < transactions; i++) {
+            accounts[i] = random.nextInt(accountCount);
+            amounts[i] = random.nextInt(100) - 10;
+        }
+        Transactions txns = new Transactions(accounts, amounts);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores=" + cores + ", transactions=" + transactions + ", accounts=" + accountCount);
+        for (int threads = 1; threads <= Math.max(cores, 4); threads *= 2) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 7; run++) {
+                int[] balances = initial.clone();
+                long start = System.nanoTime();
+                replayWith(balances, txns, threads);
+                long time = System.nanoTime() - start;
+                if (run >= 2) {
+                    best = Math.min(best, time);
+                }
+            }
+            System.out.println("threads=" + threads + " -> " + best / 1_000_000 + " ms");
+        }
+    }
+
+    // Replays through the file round trip with 1, 2, 3 and more-threads-than-accounts
+    // Throws IllegalStateException on the first mismatch with sequential Bank.withdraw()
+    private static void check(String name, int[] initial, Transactions txns) throws Exception {
+        // Expected result: sequential Bank.withdraw() (one exception per overdraft)
+        Bank[] banks = new Bank[initial.length];
+        for (int i = 0; i < initial.length; i++) {
+            banks[i] = new Bank(initial[i]);
+        }
+        int[] expectedRejected = new int[txns.size()];
+        int n = 0;
+        for (int i = 0; i < txns.size(); i++) {
+            try {
+                banks[txns.getAccounts()[i]].withdraw(txns.getAmounts()[i]);
+            } catch (InsufficientAmountException e) {
+                expectedRejected[n++] = i;
+            }
+        }
+        expectedRejected = Arrays.copyOf(expectedRejected, n);
+        int[] expectedBalances = new int[initial.length];
+        for (int i = 0; i < initial.length; i++) {
+            expectedBalances[i] = banks[i].getAmount();
+        }
+
+        File txnFile = File.createTempFile("statement", ".bin");
+        File reportFile = File.createTempFile("rejections", ".bin");
+        try {
+            int[] threadCounts = {1, 2, 3, initial.length + 3};
+            for (int threads : threadCounts) {
+                writeTransactions(txnFile.getPath(), txns);
+                int[] balances = initial.clone();
+                // replayWith() skips the size/core limits, so the split is tested even here
+                int[] rejected = replayWith(balances, readTransactions(txnFile.getPath()), threads);
+                writeRejections(reportFile.getPath(), rejected);
+                int[] report = readRejections(reportFile.getPath());
+
+                if (!Arrays.equals(balances, expectedBalances)) {
+                    throw new IllegalStateException(name + ", threads=" + threads + ": balances "
+                            + Arrays.toString(balances) + ", expected " + Arrays.toString(expectedBalances));
+                }
+                if (!Arrays.equals(rejected, expectedRejected)) {
+                    throw new IllegalStateException(name + ", threads=" + threads + ": rejected "
+                            + Arrays.toString(rejected) + ", expected " + Arrays.toString(expectedRejected));
+                }
+                if (!Arrays.equals(report, expectedRejected)) {
+                    throw new IllegalStateException(name + ", threads=" + threads + ": report "
+                            + Arrays.toString(report) + ", expected " + Arrays.toString(expectedRejected));
+                }
+                System.out.println(name + ", threads=" + threads + " -> matches Bank.withdraw() "
+                        + "(rejected " + Arrays.toString(rejected) + ")");
+            }
+        } finally {
+            txnFile.delete();
+            reportFile.delete();
+        }
+    }
+}
+
+/*
+ * =====================================================
+ *   Program Flow (for this example)
+ * =====================================================
+ * 1. The expected result is computed with Bank.withdraw() and try-catch.
+ * 2. For 1, 2, 3 and more-threads-than-accounts:
+ *    - Transactions are written to a temp file in columnar form and read back.
+ *    - Each thread gets a block of accounts and walks the file order, touching
+ *      only its own accounts → no locks needed.
+ *    - Overdrafts are recorded in per-thread lists, not thrown, then merged.
+ *    - The rejection report is written, read back and compared as well.
+ * 3. Any mismatch throws IllegalStateException with both results.
+ *
+ * =====================================================
+ *   Key Learning:
+ * =====================================================
+ * - Throwing is expensive: the JVM builds an object AND captures a stack trace.
+ * - For expected, high-volume outcomes, return a status / record the result instead.
+ * - Keep exceptions for truly unexpected problems (corrupt file, unknown account,
+ *   a failing worker thread).
+ * - Partitioning by account keeps per-account ordering, so the parallel result
+ *   is identical to the sequential one.
+ */
@@ -0,0 +1,32 @@
+package Custom_Exception;
+
+// Transactions holds one statement in columnar form
+// accounts[i] and amounts[i] together describe transaction i
+public class Transactions {
+    private final int[] accounts;
+    private final int[] amounts;
+
+    // Constructor to set both columns (must be the same length)
+    public Transactions(int[] accounts, int[] amounts) {
+        if (accounts.length != amounts.length) {
+            throw new IllegalArgumentException("accounts and amounts must have the same length");
+        }
+        this.accounts = accounts;
+        this.amounts = amounts;
+    }
+
+    // Getter method for account ids
+    public int[] getAccounts() {
+        return accounts;
+    }
+
+    // Getter method for amounts
+    public int[] getAmounts() {
+        return amounts;
+    }
+
+    // Number of transactions in the statement
+    public int size() {
+        return accounts.length;
+    }
+}